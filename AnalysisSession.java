@@ -5,46 +5,136 @@ import java.io.*;
 
 public class AnalysisSession {
 
+    // receives gas rows one at a time, grouped by gas and sorted by year within a gas
+    // temp is the aligned temperature, NaN when the row has none
+    public interface AlignedRowVisitor {
+        void startGas(String gas) throws IOException;
+        void row(int year, double concentration, double temp) throws IOException;
+        void endGas(String gas) throws IOException;
+    }
+
     private final String tempCsvPath;
     private final String gasCsvPath;
     private final java.util.List<TempRecord> temperatures;
     private final java.util.List<GasRecord> gases;
+    private final ExternalSorter.Sorted<GasRecord> gasRuns; // spilled gas runs when out of core, else null
     private final java.util.Map<String, Double> correlationByGas;
+    private YearJoin.Mode joinMode = YearJoin.Mode.INNER;
+    private int joinTolerance = 0;
 
     // constructor
     public AnalysisSession(String tempCsvPath, String gasCsvPath,
                            java.util.List<TempRecord> temperatures, java.util.List<GasRecord> gases) {
+        this(tempCsvPath, gasCsvPath, temperatures, gases, null);
+    }
+
+    private AnalysisSession(String tempCsvPath, String gasCsvPath,
+                            java.util.List<TempRecord> temperatures, java.util.List<GasRecord> gases,
+                            ExternalSorter.Sorted<GasRecord> gasRuns) {
         this.tempCsvPath = tempCsvPath;
         this.gasCsvPath = gasCsvPath;
         this.temperatures = temperatures;
         this.gases = gases;
+        this.gasRuns = gasRuns;
         this.correlationByGas = new java.util.LinkedHashMap<>();
     }
 
-    // compute pearson correlation per gas with year alignment
-    public void computeCorrelations() {
-        java.util.Map<Integer, Double> tempByYear = new java.util.TreeMap<>();
-        for (TempRecord t : temperatures) tempByYear.put(t.getYear(), t.getTemp());
+    // load both csv files
+    // gases past the loader memory budget stay on disk as sorted runs
+    // and are re-merged and streamed one gas at a time instead of being held in memory
+    public static AnalysisSession open(String tempCsvPath, String gasCsvPath) throws IOException {
+        java.util.List<TempRecord> temps = new java.util.ArrayList<>();
+        try (ExternalSorter.Sorted<TempRecord> sorted = DatasetLoader.sortTemperatures(tempCsvPath);
+             ExternalSorter.Cursor<TempRecord> c = sorted.cursor()) {
+            // a spilled temperature file keeps only the last reading per year, which is all alignment uses
+            boolean collapse = sorted.spilled();
+            while (c.hasNext()) {
+                TempRecord t = c.next();
+                int last = temps.size() - 1;
+                if (collapse && last >= 0 && temps.get(last).getYear() == t.getYear()) temps.set(last, t);
+                else temps.add(t);
+            }
+        }
+        ExternalSorter.Sorted<GasRecord> sorted = DatasetLoader.sortGases(gasCsvPath);
+        if (sorted.spilled()) {
+            return new AnalysisSession(tempCsvPath, gasCsvPath, temps, java.util.Collections.emptyList(), sorted);
+        }
+        java.util.List<GasRecord> gases = new java.util.ArrayList<>();
+        try (sorted; ExternalSorter.Cursor<GasRecord> c = sorted.cursor()) {
+            while (c.hasNext()) gases.add(c.next());
+        }
+        return new AnalysisSession(tempCsvPath, gasCsvPath, temps, gases);
+    }
+
+    // one pass over every gas row with its aligned temperature
+    // out of core sessions merge the sorted runs, so only the current row is held in memory
+    public void forEachAlignedRow(AlignedRowVisitor visitor) throws IOException {
+        YearJoin join = new YearJoin(temperatures, joinMode, joinTolerance);
+        try (ExternalSorter.Cursor<GasRecord> c = gasCursor()) {
+            while (c.hasNext()) {
+                String gas = c.peek().getGas();
+                YearJoin.Matcher m = join.matcher();
+                visitor.startGas(gas);
+                while (c.hasNext() && c.peek().getGas().equals(gas)) {
+                    GasRecord r = c.next();
+                    visitor.row(r.getYear(), r.getConcentration(), m.temperatureFor(r.getYear()));
+                }
+                visitor.endGas(gas);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private ExternalSorter.Cursor<GasRecord> gasCursor() throws IOException {
+        if (gasRuns != null) return gasRuns.cursor();
+        for (int i = 1; i < gases.size(); i++) {
+            if (DatasetLoader.GAS_ORDER.compare(gases.get(i - 1), gases.get(i)) > 0) {
+                java.util.List<GasRecord> sorted = new java.util.ArrayList<>(gases);
+                sorted.sort(DatasetLoader.GAS_ORDER);
+                return ExternalSorter.cursor(sorted);
+            }
+        }
+        return ExternalSorter.cursor(gases);
+    }
 
-        java.util.Map<String, java.util.List<GasRecord>> byGas = new java.util.LinkedHashMap<>();
-        for (GasRecord g : gases) byGas.computeIfAbsent(g.getGas(), k -> new java.util.ArrayList<>()).add(g);
+    // choose how gas years are matched to temperature years
+    public void setAlignment(YearJoin.Mode mode, int tolerance) {
+        if (tolerance < 0) throw new IllegalArgumentException("tolerance must not be negative");
+        this.joinMode = mode;
+        this.joinTolerance = tolerance;
+    }
 
+    // delete the spilled gas runs, if any
+    public void close() {
+        if (gasRuns != null) gasRuns.close();
+    }
+
+    // compute pearson correlation per gas with year alignment
+    public void computeCorrelations() throws IOException {
+        computeCorrelations(null);
+    }
+
+    // same, also handing every aligned row to another visitor (e.g. chart output)
+    // so one pass over the data serves both
+    public void computeCorrelations(AlignedRowVisitor also) throws IOException {
         correlationByGas.clear();
-        for (java.util.Map.Entry<String, java.util.List<GasRecord>> e : byGas.entrySet()) {
-            String gas = e.getKey();
-            java.util.List<GasRecord> rows = e.getValue();
+        forEachAlignedRow(new AlignedRowVisitor() {
+            private Stats.RunningPearson acc;
 
-            java.util.List<Double> xs = new java.util.ArrayList<>();
-            java.util.List<Double> ys = new java.util.ArrayList<>();
-            for (GasRecord r : rows) {
-                Double tv = tempByYear.get(r.getYear());
-                if (tv != null) { xs.add(tv); ys.add(r.getConcentration()); }
+            public void startGas(String gas) throws IOException {
+                acc = new Stats.RunningPearson();
+                if (also != null) also.startGas(gas);
             }
-            if (xs.size() >= 3) {
-                double rr = Stats.pearson(xs, ys);
-                correlationByGas.put(gas, rr);
+            public void row(int year, double concentration, double temp) throws IOException {
+                if (!Double.isNaN(temp)) acc.add(temp, concentration);
+                if (also != null) also.row(year, concentration, temp);
             }
-        }
+            public void endGas(String gas) throws IOException {
+                if (acc.count() >= 3) correlationByGas.put(gas, acc.r());
+                if (also != null) also.endGas(gas);
+            }
+        });
     }
 
     // prints full sentences and punctuation
@@ -54,6 +144,8 @@ public class AnalysisSession {
             return;
         }
         System.out.println("Correlation results:");
+        String alignment = describeAlignment();
+        if (alignment != null) System.out.println(alignment);
         for (java.util.Map.Entry<String, Double> e : correlationByGas.entrySet()) {
             String gas = e.getKey();
             double r = e.getValue();
@@ -62,6 +154,18 @@ public class AnalysisSession {
         }
     }
 
+    // alignment note for the summary, null for the default inner join
+    private String describeAlignment() {
+        if (joinMode == YearJoin.Mode.LEFT) {
+            return "Years were aligned with a left join. Gas rows without a temperature are kept in the scatter CSVs with an empty y value.";
+        }
+        if (joinMode == YearJoin.Mode.NEAREST) {
+            return "Years were aligned to the nearest temperature year within " + joinTolerance
+                    + (joinTolerance == 1 ? " year." : " years.");
+        }
+        return null;
+    }
+
     // interpretation helper
     private String interpretCorrelation(double r) {
         double a = Math.abs(r);
@@ -83,6 +187,8 @@ public class AnalysisSession {
             bw.newLine();
             bw.write("GAS_FILE=" + gasCsvPath);
             bw.newLine();
+            bw.write("JOIN=" + joinMode.name().toLowerCase(Locale.ROOT) + "," + joinTolerance);
+            bw.newLine();
             for (java.util.Map.Entry<String, Double> e : correlationByGas.entrySet()) {
                 bw.write("CORR," + e.getKey() + "," + e.getValue());
                 bw.newLine();
@@ -94,12 +200,24 @@ public class AnalysisSession {
     public static AnalysisSession load(String inPath) throws IOException {
         String tempPath = null;
         String gasPath = null;
+        YearJoin.Mode mode = YearJoin.Mode.INNER; // summaries saved before JOIN existed
+        int tolerance = 0;
         java.util.Map<String, Double> corrs = new java.util.LinkedHashMap<>();
         try (BufferedReader br = new BufferedReader(new FileReader(inPath))) {
             String line;
             while ((line = br.readLine()) != null) {
                 if (line.startsWith("TEMP_FILE=")) tempPath = line.substring(10).trim();
                 else if (line.startsWith("GAS_FILE=")) gasPath = line.substring(9).trim();
+                else if (line.startsWith("JOIN=")) {
+                    String[] parts = line.substring(5).split(",");
+                    try {
+                        mode = YearJoin.Mode.parse(parts[0]);
+                        tolerance = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 0;
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("summary file has an invalid JOIN line: " + line);
+                    }
+                    if (tolerance < 0) throw new IOException("summary file has an invalid JOIN line: " + line);
+                }
                 else if (line.startsWith("CORR,")) {
                     String[] parts = line.split(",");
                     if (parts.length == 3) {
@@ -111,9 +229,8 @@ public class AnalysisSession {
             }
         }
         if (tempPath == null || gasPath == null) throw new IOException("summary file missing required lines");
-        java.util.List<TempRecord> temps = DatasetLoader.readTemperatures(tempPath);
-        java.util.List<GasRecord> gases = DatasetLoader.readGases(gasPath);
-        AnalysisSession s = new AnalysisSession(tempPath, gasPath, temps, gases);
+        AnalysisSession s = open(tempPath, gasPath);
+        s.setAlignment(mode, tolerance);
         for (java.util.Map.Entry<String, Double> e : corrs.entrySet()) s.correlationByGas.put(e.getKey(), e.getValue());
         return s;
     }
@@ -121,7 +238,13 @@ public class AnalysisSession {
     // getters
     public java.util.Map<String, Double> getCorrelationByGas() { return correlationByGas; }
     public java.util.List<TempRecord> getTemperatures() { return temperatures; }
-    public java.util.List<GasRecord> getGases() { return gases; }
+    public java.util.List<GasRecord> getGases() {
+        if (gasRuns != null) throw new IllegalStateException("gas data is out of core, use forEachAlignedRow");
+        return gases;
+    }
+    public boolean isOutOfCore() { return gasRuns != null; }
+    public YearJoin.Mode getJoinMode() { return joinMode; }
+    public int getJoinTolerance() { return joinTolerance; }
     public String getTempCsvPath() { return tempCsvPath; }
     public String getGasCsvPath() { return gasCsvPath; }
 }
@@ -0,0 +1,147 @@
+package main;
+
+import java.util.*;
+import java.io.*;
+
+// chart files written while gas rows stream past
+// time series are bounded by distinct years, scatter csv rows go straight to disk,
+// scatter png points are kept only up to a cap since XChart needs them in memory
+// rows without a temperature go to the scatter csv with an empty y when the mode keeps them
+// console messages are collected so they can be printed after the correlation summary
+public class ChartOutput implements AnalysisSession.AlignedRowVisitor, Closeable {
+
+    private final int maxScatterPoints;
+    private final boolean keepUnmatched;
+    private boolean anyPng;
+    private String failure; // first write error, later chart writes are skipped
+    private final java.util.List<String> messages = new ArrayList<>();
+
+    // current gas
+    private Map<Integer, Double> concSeries;
+    private PrintWriter scatterCsv;
+    private double[] xs;
+    private double[] ys;
+    private int points;
+    private boolean tooManyPoints;
+
+    // constructor
+    public ChartOutput(int maxScatterPoints, YearJoin.Mode mode) {
+        this.maxScatterPoints = maxScatterPoints;
+        this.keepUnmatched = mode.keepsUnmatched();
+    }
+
+    // temperature series csv and png
+    public void writeTemperatures(java.util.List<TempRecord> temps) {
+        if (failure != null) return;
+        Map<Integer, Double> tempSeries = new LinkedHashMap<>();
+        for (TempRecord t : temps) tempSeries.put(t.getYear(), t.getTemp());
+        try {
+            Visualization.saveTimeSeriesCsv("temps_timeseries.csv", tempSeries);
+        } catch (IOException e) {
+            failure = e.getMessage();
+            return;
+        }
+        timeSeriesPng("temps_timeseries.png", tempSeries, "Global Temperature", "Temperature");
+    }
+
+    public void startGas(String gas) {
+        concSeries = new LinkedHashMap<>();
+        xs = new double[16];
+        ys = new double[16];
+        points = 0;
+        tooManyPoints = false;
+        if (failure != null) return;
+        try {
+            scatterCsv = Visualization.openScatterCsv("temp_vs_" + gas + ".csv");
+        } catch (IOException e) {
+            failure = e.getMessage();
+        }
+    }
+
+    public void row(int year, double concentration, double temp) {
+        if (failure != null) return;
+        concSeries.put(year, concentration);
+        if (Double.isNaN(temp)) {
+            if (keepUnmatched) Visualization.writeScatterRow(scatterCsv, concentration, temp);
+            return;
+        }
+        Visualization.writeScatterRow(scatterCsv, concentration, temp);
+        if (tooManyPoints) return;
+        if (points == maxScatterPoints) {
+            tooManyPoints = true;
+            xs = null;
+            ys = null;
+            return;
+        }
+        if (points == xs.length) {
+            int cap = (int) Math.min((long) xs.length * 2, maxScatterPoints);
+            xs = Arrays.copyOf(xs, cap);
+            ys = Arrays.copyOf(ys, cap);
+        }
+        xs[points] = concentration;
+        ys[points] = temp;
+        points++;
+    }
+
+    public void endGas(String gas) {
+        if (failure != null) {
+            closeScatterCsv();
+            return;
+        }
+        if (!closeScatterCsv()) {
+            failure = "could not write temp_vs_" + gas + ".csv";
+            return;
+        }
+        try {
+            Visualization.saveTimeSeriesCsv(gas + "_timeseries.csv", concSeries);
+        } catch (IOException e) {
+            failure = e.getMessage();
+            return;
+        }
+        timeSeriesPng(gas + "_timeseries.png", concSeries, gas + " Concentration", "Concentration");
+        if (tooManyPoints) {
+            messages.add("Charts: " + gas + " has more than " + maxScatterPoints
+                    + " aligned points, so its scatter PNG was skipped. The CSV was written.");
+        } else {
+            try {
+                Visualization.writeScatterPng("temp_vs_" + gas + ".png", Arrays.copyOf(xs, points), Arrays.copyOf(ys, points),
+                        "Temperature vs " + gas, gas + " Concentration", "Temperature");
+                anyPng = true;
+            } catch (Exception ex) {
+                messages.add("chart save failed " + ex.getMessage());
+            }
+        }
+        concSeries = null;
+        xs = null;
+        ys = null;
+    }
+
+    private void timeSeriesPng(String path, Map<Integer, Double> series, String title, String yAxisLabel) {
+        try {
+            Visualization.writeTimeSeriesPng(path, series, title, yAxisLabel);
+            anyPng = true;
+        } catch (Exception ex) {
+            messages.add("chart save failed " + ex.getMessage());
+        }
+    }
+
+    // closes a scatter csv left open by an interrupted pass
+    @Override
+    public void close() {
+        closeScatterCsv();
+    }
+
+    // true when the csv closed without write errors
+    private boolean closeScatterCsv() {
+        if (scatterCsv == null) return true;
+        scatterCsv.close();
+        boolean ok = !scatterCsv.checkError();
+        scatterCsv = null;
+        return ok;
+    }
+
+    // getters
+    public boolean isAnyPng() { return anyPng; }
+    public String getFailure() { return failure; }
+    public java.util.List<String> getMessages() { return messages; }
+}
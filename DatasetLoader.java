@@ -6,15 +6,89 @@ import java.io.*;
 // csv loading and sample generation
 public class DatasetLoader {
 
-    // read temperature csv
+    // rows held on the heap per file before sorted runs spill to temp files
+    // override with -Dmain.memoryBudgetRows=N
+    private static final int DEFAULT_MEMORY_BUDGET_ROWS = 1_000_000;
+    private static final int memoryBudgetRows = readMemoryBudget();
+
+    static final Comparator<TempRecord> TEMP_ORDER = Comparator.comparingInt(TempRecord::getYear);
+    static final Comparator<GasRecord> GAS_ORDER =
+            Comparator.comparing(GasRecord::getGas).thenComparingInt(GasRecord::getYear);
+
+    // compact binary rows for spilled runs
+    static final ExternalSorter.Codec<TempRecord> TEMP_CODEC = new ExternalSorter.Codec<TempRecord>() {
+        public void write(DataOutputStream out, TempRecord r) throws IOException {
+            out.writeInt(r.getYear());
+            out.writeDouble(r.getTemp());
+        }
+        public TempRecord read(DataInputStream in) throws IOException {
+            return new TempRecord(in.readInt(), in.readDouble());
+        }
+    };
+    static final ExternalSorter.Codec<GasRecord> GAS_CODEC = new ExternalSorter.Codec<GasRecord>() {
+        public void write(DataOutputStream out, GasRecord r) throws IOException {
+            out.writeUTF(r.getGas());
+            out.writeInt(r.getYear());
+            out.writeDouble(r.getConcentration());
+        }
+        public GasRecord read(DataInputStream in) throws IOException {
+            String gas = in.readUTF();
+            return new GasRecord(in.readInt(), gas, in.readDouble());
+        }
+    };
+
+    // memory budget
+    public static int getMemoryBudgetRows() { return memoryBudgetRows; }
+
+    // system property, values below one row fall back to the default
+    private static int readMemoryBudget() {
+        int rows = Integer.getInteger("main.memoryBudgetRows", DEFAULT_MEMORY_BUDGET_ROWS);
+        if (rows < 1) {
+            System.out.println("main.memoryBudgetRows must be at least 1. Using " + DEFAULT_MEMORY_BUDGET_ROWS + ".");
+            return DEFAULT_MEMORY_BUDGET_ROWS;
+        }
+        return rows;
+    }
+
+    // read temperature csv fully into memory, sorted by year
+    public static java.util.List<TempRecord> readTemperatures(String path) throws IOException {
+        try (ExternalSorter.Sorted<TempRecord> sorted = sortTemperatures(path);
+             ExternalSorter.Cursor<TempRecord> c = sorted.cursor()) {
+            return drain(c);
+        }
+    }
+
+    // read gas csv fully into memory, sorted by gas then year
+    public static java.util.List<GasRecord> readGases(String path) throws IOException {
+        try (ExternalSorter.Sorted<GasRecord> sorted = sortGases(path);
+             ExternalSorter.Cursor<GasRecord> c = sorted.cursor()) {
+            return drain(c);
+        }
+    }
+
+    // sorted temperatures, spilled to disk past the memory budget
     // accepts headers like: year,temp | Year,Temperature | date,anomalyC
     // delimiters: comma, semicolon, tab
     // units: °C expected; if values look like Kelvin (> 200), convert to °C
-    public static java.util.List<TempRecord> readTemperatures(String path) throws IOException {
-        List<TempRecord> rows = new ArrayList<>();
+    public static ExternalSorter.Sorted<TempRecord> sortTemperatures(String path) throws IOException {
+        try (ExternalSorter<TempRecord> rows = new ExternalSorter<>(TEMP_ORDER, TEMP_CODEC, memoryBudgetRows)) {
+            parseTemperatures(path, rows);
+            return rows.finish();
+        }
+    }
+
+    // sorted gases, spilled to disk past the memory budget
+    public static ExternalSorter.Sorted<GasRecord> sortGases(String path) throws IOException {
+        try (ExternalSorter<GasRecord> rows = new ExternalSorter<>(GAS_ORDER, GAS_CODEC, memoryBudgetRows)) {
+            parseGases(path, rows);
+            return rows.finish();
+        }
+    }
+
+    private static void parseTemperatures(String path, ExternalSorter<TempRecord> rows) throws IOException {
         try (BufferedReader br = new BufferedReader(new FileReader(path))) {
             String first = skipPreamble(br);
-            if (first == null) return rows;
+            if (first == null) return;
 
             String delim = detectDelimiter(first);
             String[] header = split(first, delim);
@@ -43,22 +117,19 @@ public class DatasetLoader {
                 rows.add(new TempRecord(year, tVal));
             }
         }
-        rows.sort(Comparator.comparingInt(TempRecord::getYear));
-        return rows;
     }
 
-    // read gas csv
+    // parse gas csv
     // accepts headers like: year,gas,concentration | date,species,value
     // units:
     //  - ppm expected
     //  - if header mentions ppb, convert ppb -> ppm
     //  - if header mentions mole_fraction (fraction), convert fraction -> ppm
     // delimiters: comma, semicolon, tab
-    public static java.util.List<GasRecord> readGases(String path) throws IOException {
-        List<GasRecord> rows = new ArrayList<>();
+    private static void parseGases(String path, ExternalSorter<GasRecord> rows) throws IOException {
         try (BufferedReader br = new BufferedReader(new FileReader(path))) {
             String first = skipPreamble(br);
-            if (first == null) return rows;
+            if (first == null) return;
 
             String delim = detectDelimiter(first);
             String[] header = split(first, delim);
@@ -99,8 +170,6 @@ public class DatasetLoader {
                 rows.add(new GasRecord(year, gas, conc));
             }
         }
-        rows.sort(Comparator.comparing(GasRecord::getGas).thenComparingInt(GasRecord::getYear));
-        return rows;
     }
 
     // sample generators remain the same
@@ -135,6 +204,12 @@ public class DatasetLoader {
     }
 
     // helpers
+    private static <T> java.util.List<T> drain(Iterator<T> it) {
+        List<T> out = new ArrayList<>();
+        while (it.hasNext()) out.add(it.next());
+        return out;
+    }
+
     private static String skipPreamble(BufferedReader br) throws IOException {
         String ln;
         while ((ln = br.readLine()) != null) {
@@ -0,0 +1,267 @@
+package main;
+
+import java.util.*;
+import java.io.*;
+
+// bounded memory sort
+// keeps at most maxInMemory records on the heap, spills sorted runs to binary temp files
+// and k-way merges the runs when read back
+public class ExternalSorter<T> implements Closeable {
+
+    // most runs merged at once, bounds open files and read buffers during a merge
+    static final int MAX_FAN_IN = 64;
+
+    // binary encoding for spilled records
+    public interface Codec<T> {
+        void write(DataOutputStream out, T rec) throws IOException;
+        T read(DataInputStream in) throws IOException;
+    }
+
+    // sorted read side
+    public interface Cursor<T> extends Iterator<T>, Closeable {
+        T peek();
+        @Override void close();
+    }
+
+    // finished sort, either held in memory or as at most MAX_FAN_IN runs on disk
+    // cursors can be opened repeatedly, closing it deletes the runs
+    public static final class Sorted<T> implements Closeable {
+        private final java.util.List<T> rows; // null when spilled
+        private final java.util.List<File> runs;
+        private final Comparator<T> order;
+        private final Codec<T> codec;
+
+        private Sorted(java.util.List<T> rows, java.util.List<File> runs, Comparator<T> order, Codec<T> codec) {
+            this.rows = rows;
+            this.runs = runs;
+            this.order = order;
+            this.codec = codec;
+        }
+
+        public boolean spilled() { return rows == null; }
+
+        public Cursor<T> cursor() throws IOException {
+            if (rows != null) return new ListCursor<>(rows);
+            return new MergeCursor<>(runs, order, codec);
+        }
+
+        @Override
+        public void close() {
+            if (runs != null) for (File f : runs) f.delete();
+        }
+    }
+
+    private final Comparator<T> order;
+    private final Codec<T> codec;
+    private final int maxInMemory;
+    private java.util.List<T> buffer = new ArrayList<>();
+    private final java.util.List<File> runs = new ArrayList<>();
+    private boolean finished;
+
+    // constructor
+    public ExternalSorter(Comparator<T> order, Codec<T> codec, int maxInMemory) {
+        if (maxInMemory < 1) throw new IllegalArgumentException("memory budget must be at least one row");
+        this.order = order;
+        this.codec = codec;
+        this.maxInMemory = maxInMemory;
+    }
+
+    // add one record, spilling a sorted run once the budget is reached
+    public void add(T rec) throws IOException {
+        if (finished) throw new IllegalStateException("sorter already finished");
+        buffer.add(rec);
+        if (buffer.size() >= maxInMemory) spill();
+    }
+
+    // sorted result, stays in memory when nothing spilled
+    // otherwise runs are merged in passes of MAX_FAN_IN until one merge can read them all
+    public Sorted<T> finish() throws IOException {
+        if (finished) throw new IllegalStateException("sorter already finished");
+        if (runs.isEmpty()) {
+            buffer.sort(order);
+            java.util.List<T> rows = buffer;
+            buffer = new ArrayList<>();
+            finished = true;
+            return new Sorted<>(rows, null, order, codec);
+        }
+        if (!buffer.isEmpty()) spill();
+        while (runs.size() > MAX_FAN_IN) mergePass();
+        finished = true;
+        return new Sorted<>(null, new ArrayList<>(runs), order, codec);
+    }
+
+    // drops runs that were never handed to a Sorted
+    @Override
+    public void close() {
+        buffer.clear();
+        if (!finished) {
+            for (File f : runs) f.delete();
+            finished = true;
+        }
+        runs.clear();
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(order);
+        runs.add(writeRun(buffer.iterator(), codec));
+        buffer.clear();
+    }
+
+    // merge consecutive groups of runs, keeping run order so the sort stays stable
+    private void mergePass() throws IOException {
+        java.util.List<File> merged = new ArrayList<>();
+        try {
+            for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                java.util.List<File> group = runs.subList(i, Math.min(i + MAX_FAN_IN, runs.size()));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+                try (MergeCursor<T> c = new MergeCursor<>(group, order, codec)) {
+                    merged.add(writeRun(c, codec));
+                }
+                for (File f : group) f.delete();
+            }
+        } catch (IOException | RuntimeException e) {
+            for (File f : merged) f.delete();
+            throw e;
+        }
+        runs.clear();
+        runs.addAll(merged);
+    }
+
+    // in memory cursor over an already sorted list
+    public static <T> Cursor<T> cursor(java.util.List<T> sorted) {
+        return new ListCursor<>(sorted);
+    }
+
+    // write records to a new temp file: long count followed by encoded rows
+    // cleanup is explicit through close() on the sorter or its Sorted result
+    static <T> File writeRun(Iterator<T> rows, Codec<T> codec) throws IOException {
+        File f = File.createTempFile("sortrun", ".bin");
+        try (FileOutputStream fos = new FileOutputStream(f);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeLong(0L); // count placeholder, patched below
+            long n = 0;
+            while (rows.hasNext()) {
+                codec.write(out, rows.next());
+                n++;
+            }
+            out.flush();
+            fos.getChannel().position(0);
+            new DataOutputStream(fos).writeLong(n);
+            return f;
+        } catch (UncheckedIOException e) {
+            f.delete();
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            f.delete();
+            throw e;
+        }
+    }
+
+    private static class ListCursor<T> implements Cursor<T> {
+        private final java.util.List<T> rows;
+        private int pos;
+
+        ListCursor(java.util.List<T> rows) { this.rows = rows; }
+
+        public boolean hasNext() { return pos < rows.size(); }
+        public T peek() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return rows.get(pos);
+        }
+        public T next() {
+            T r = peek();
+            pos++;
+            return r;
+        }
+        public void close() { }
+    }
+
+    private static class RunCursor<T> implements Cursor<T> {
+        private final File file;
+        private final Codec<T> codec;
+        private final DataInputStream in;
+        private long remaining;
+        private T head;
+
+        RunCursor(File file, Codec<T> codec) throws IOException {
+            this.file = file;
+            this.codec = codec;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                this.remaining = in.readLong();
+                advance();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private void advance() throws IOException {
+            if (remaining > 0) {
+                head = codec.read(in);
+                remaining--;
+            } else {
+                head = null;
+            }
+        }
+
+        public boolean hasNext() { return head != null; }
+        public T peek() {
+            if (head == null) throw new NoSuchElementException();
+            return head;
+        }
+        public T next() {
+            T r = peek();
+            try {
+                advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException("could not read sort run " + file, e);
+            }
+            return r;
+        }
+        public void close() {
+            try { in.close(); } catch (IOException ignore) { }
+        }
+    }
+
+    // k-way merge over at most MAX_FAN_IN runs, ties go to the earlier run so the sort stays stable
+    private static class MergeCursor<T> implements Cursor<T> {
+        private final java.util.List<RunCursor<T>> sources = new ArrayList<>();
+        private final PriorityQueue<Integer> heap;
+
+        MergeCursor(java.util.List<File> runs, Comparator<T> order, Codec<T> codec) throws IOException {
+            if (runs.size() > MAX_FAN_IN) throw new IllegalArgumentException("too many runs for one merge: " + runs.size());
+            try {
+                for (File f : runs) sources.add(new RunCursor<>(f, codec));
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+            Comparator<Integer> byHead = (a, b) -> order.compare(sources.get(a).peek(), sources.get(b).peek());
+            this.heap = new PriorityQueue<>(Math.max(1, sources.size()), byHead.thenComparingInt(i -> i));
+            for (int i = 0; i < sources.size(); i++) {
+                if (sources.get(i).hasNext()) heap.add(i);
+            }
+        }
+
+        public boolean hasNext() { return !heap.isEmpty(); }
+        public T peek() {
+            if (heap.isEmpty()) throw new NoSuchElementException();
+            return sources.get(heap.peek()).peek();
+        }
+        public T next() {
+            if (heap.isEmpty()) throw new NoSuchElementException();
+            int i = heap.poll();
+            RunCursor<T> src = sources.get(i);
+            T r = src.next();
+            if (src.hasNext()) heap.add(i);
+            return r;
+        }
+        public void close() {
+            for (RunCursor<T> c : sources) c.close();
+        }
+    }
+}
@@ -11,21 +11,26 @@ public class Main {
 
     // program entry
     public static void main(String[] args) {
-        while (true) {
-            printMenu();
-            String choice = SC.nextLine().trim();
-            if (choice.equals("1")) {
-                createNewAnalysis();
-            } else if (choice.equals("2")) {
-                saveCurrent();
-            } else if (choice.equals("3")) {
-                loadExisting();
-            } else if (choice.equals("4") || choice.equalsIgnoreCase("q")) {
-                System.out.println("Goodbye.");
-                break;
-            } else {
-                System.out.println("Unrecognized option. Choose 1, 2, 3, or 4.");
+        try {
+            while (true) {
+                printMenu();
+                String choice = SC.nextLine().trim();
+                if (choice.equals("1")) {
+                    createNewAnalysis();
+                } else if (choice.equals("2")) {
+                    saveCurrent();
+                } else if (choice.equals("3")) {
+                    loadExisting();
+                } else if (choice.equals("4") || choice.equalsIgnoreCase("q")) {
+                    System.out.println("Goodbye.");
+                    break;
+                } else {
+                    System.out.println("Unrecognized option. Choose 1, 2, 3, or 4.");
+                }
             }
+        } finally {
+            // spilled gas runs are temp files
+            replaceSession(null);
         }
     }
 
@@ -52,24 +57,57 @@ public class Main {
             System.out.println("Press Enter to use sample_gases.csv.");
             String gasPath = SC.nextLine().trim();
 
+            System.out.println("Enter year alignment: inner, left, or nearest.");
+            System.out.println("Press Enter to use inner.");
+            YearJoin.Mode mode = YearJoin.Mode.INNER;
+            String modeText = SC.nextLine().trim();
+            if (!modeText.isEmpty()) {
+                try {
+                    mode = YearJoin.Mode.parse(modeText);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unrecognized alignment. Using inner.");
+                }
+            }
+            int tolerance = mode == YearJoin.Mode.NEAREST ? readTolerance() : 0;
+
             if (tempPath.isEmpty() || gasPath.isEmpty()) {
                 DatasetLoader.generateSampleFiles();
                 tempPath = "sample_temps.csv";
                 gasPath = "sample_gases.csv";
             }
 
-            java.util.List<TempRecord> temps = DatasetLoader.readTemperatures(tempPath);
-            java.util.List<GasRecord> gases = DatasetLoader.readGases(gasPath);
-            currentSession = new AnalysisSession(tempPath, gasPath, temps, gases);
-            currentSession.computeCorrelations();
-            currentSession.printSummary();
+            replaceSession(AnalysisSession.open(tempPath, gasPath));
+            currentSession.setAlignment(mode, tolerance);
+            if (currentSession.isOutOfCore()) {
+                System.out.println("Gas data exceeds the memory budget of " + DatasetLoader.getMemoryBudgetRows()
+                        + " rows and will be streamed from disk.");
+            }
 
-            tryCreateOutputs(currentSession);
+            // correlations and chart files share one pass over the data
+            try (ChartOutput charts = newChartOutput(currentSession)) {
+                currentSession.computeCorrelations(charts);
+                currentSession.printSummary();
+                reportCharts(charts);
+            }
         } catch (IOException e) {
             System.out.println("Failed to load data. " + e.getMessage());
         }
     }
 
+    // year gap for nearest alignment
+    private static int readTolerance() {
+        System.out.println("Enter the largest year gap for nearest alignment.");
+        System.out.println("Press Enter to use 1.");
+        String text = SC.nextLine().trim();
+        if (text.isEmpty()) return 1;
+        try {
+            int tolerance = Integer.parseInt(text);
+            if (tolerance >= 0) return tolerance;
+        } catch (NumberFormatException ignore) { }
+        System.out.println("Invalid year gap. Using 1.");
+        return 1;
+    }
+
     // save summary
     private static void saveCurrent() {
         if (currentSession == null) {
@@ -99,7 +137,7 @@ public class Main {
             return;
         }
         try {
-            currentSession = AnalysisSession.load(in);
+            replaceSession(AnalysisSession.load(in));
             currentSession.printSummary();
             tryCreateOutputs(currentSession);
         } catch (IOException e) {
@@ -107,51 +145,43 @@ public class Main {
         }
     }
 
+    // swap sessions and release the previous one
+    private static void replaceSession(AnalysisSession s) {
+        if (currentSession != null) currentSession.close();
+        currentSession = s;
+    }
+
     // outputs for charts  csv always  png via xchart or java2d fallback
     private static void tryCreateOutputs(AnalysisSession s) {
-        try {
-            java.util.Map<Integer, Double> tempSeries = new java.util.LinkedHashMap<>();
-            for (TempRecord t : s.getTemperatures()) tempSeries.put(t.getYear(), t.getTemp());
-            Visualization.saveTimeSeriesCsv("temps_timeseries.csv", tempSeries);
-            boolean anyPng = Visualization.saveTimeSeriesPng("temps_timeseries.png", tempSeries, "Global Temperature", "Temperature");
-
-            java.util.Map<String, java.util.List<GasRecord>> byGas = new java.util.LinkedHashMap<>();
-            for (GasRecord g : s.getGases()) byGas.computeIfAbsent(g.getGas(), k -> new java.util.ArrayList<>()).add(g);
-
-            java.util.Map<Integer, Double> tempByYear = new java.util.LinkedHashMap<>();
-            for (TempRecord t : s.getTemperatures()) tempByYear.put(t.getYear(), t.getTemp());
-
-            for (java.util.Map.Entry<String, java.util.List<GasRecord>> e : byGas.entrySet()) {
-                String gas = e.getKey();
-                java.util.List<GasRecord> rows = e.getValue();
-
-                java.util.Map<Integer, Double> concSeries = new java.util.LinkedHashMap<>();
-                java.util.List<Double> xs = new java.util.ArrayList<>();
-                java.util.List<Double> ys = new java.util.ArrayList<>();
-                for (GasRecord r : rows) {
-                    concSeries.put(r.getYear(), r.getConcentration());
-                    Double tv = tempByYear.get(r.getYear());
-                    if (tv != null) { xs.add(r.getConcentration()); ys.add(tv); }
-                }
+        try (ChartOutput charts = newChartOutput(s)) {
+            s.forEachAlignedRow(charts);
+            reportCharts(charts);
+        } catch (IOException ioe) {
+            System.out.println("Chart data read failed. " + ioe.getMessage());
+        }
+    }
 
-                Visualization.saveTimeSeriesCsv(gas + "_timeseries.csv", concSeries);
-                anyPng |= Visualization.saveTimeSeriesPng(gas + "_timeseries.png", concSeries, gas + " Concentration", "Concentration");
-                Visualization.saveScatterCsv("temp_vs_" + gas + ".csv", xs, ys);
-                anyPng |= Visualization.saveScatterPng("temp_vs_" + gas + ".png", xs, ys, "Temperature vs " + gas, gas + " Concentration", "Temperature");
-            }
+    // chart writer for a session, temperature charts are written right away
+    private static ChartOutput newChartOutput(AnalysisSession s) {
+        ChartOutput charts = new ChartOutput(DatasetLoader.getMemoryBudgetRows(), s.getJoinMode());
+        charts.writeTemperatures(s.getTemperatures());
+        return charts;
+    }
 
-            if (!anyPng) {
-                if (!Visualization.isXChartPresent()) {
-                    System.out.println("Charts: XChart not detected on the runtime classpath. PNGs were not written.");
-                    System.out.println("Tip: run with -cp out:xchart-3.8.8.jar so charts are saved.");
-                } else {
-                    System.out.println("Charts: XChart detected but PNG save calls did not succeed.");
-                }
+    // chart messages and status after a pass, printed after the summary
+    private static void reportCharts(ChartOutput charts) {
+        for (String m : charts.getMessages()) System.out.println(m);
+        if (charts.getFailure() != null) {
+            System.out.println("Chart file write failed. " + charts.getFailure());
+        } else if (!charts.isAnyPng()) {
+            if (!Visualization.isXChartPresent()) {
+                System.out.println("Charts: XChart not detected on the runtime classpath. PNGs were not written.");
+                System.out.println("Tip: run with -cp out:xchart-3.8.8.jar so charts are saved.");
             } else {
-                System.out.println("Charts: PNG files were written to the current folder.");
+                System.out.println("Charts: XChart detected but PNG save calls did not succeed.");
             }
-        } catch (IOException ioe) {
-            System.out.println("Chart file write failed. " + ioe.getMessage());
+        } else {
+            System.out.println("Charts: PNG files were written to the current folder.");
         }
     }
 }
@@ -3,23 +3,39 @@ package main;
 // statistical helpers
 public class Stats {
 
+    // streaming pearson correlation, constant memory for any number of pairs
+    // keeps running means and co-moments (welford) rather than raw sums to avoid cancellation
+    public static final class RunningPearson {
+        private long n;
+        private double meanX, meanY, sxx, syy, sxy;
+
+        public void add(double x, double y) {
+            n++;
+            double dx = x - meanX;
+            meanX += dx / n;
+            double dy = y - meanY;
+            meanY += dy / n;
+            sxx += dx * (x - meanX);
+            syy += dy * (y - meanY);
+            sxy += dx * (y - meanY);
+        }
+
+        public long count() { return n; }
+
+        public double r() {
+            if (n < 2) return 0.0;
+            double denom = Math.sqrt(sxx) * Math.sqrt(syy);
+            if (denom == 0) return 0.0;
+            return sxy / denom;
+        }
+    }
+
     // pearson correlation coefficient
     public static double pearson(java.util.List<Double> xs, java.util.List<Double> ys) {
+        RunningPearson acc = new RunningPearson();
         int n = Math.min(xs.size(), ys.size());
-        if (n < 2) return 0.0;
-        double meanX = mean(xs);
-        double meanY = mean(ys);
-        double num = 0.0, denX = 0.0, denY = 0.0;
-        for (int i = 0; i < n; i++) {
-            double dx = xs.get(i) - meanX;
-            double dy = ys.get(i) - meanY;
-            num += dx * dy;
-            denX += dx * dx;
-            denY += dy * dy;
-        }
-        double denom = Math.sqrt(denX) * Math.sqrt(denY);
-        if (denom == 0) return 0.0;
-        return num / denom;
+        for (int i = 0; i < n; i++) acc.add(xs.get(i), ys.get(i));
+        return acc.r();
     }
 
     // mean helper
@@ -27,43 +27,31 @@ public class Visualization {
 
     // write scatter csv
     public static void saveScatterCsv(String outputCsvPath, List<Double> xValues, List<Double> yValues) throws java.io.IOException {
-        try (java.io.PrintWriter pw = new java.io.PrintWriter(new java.io.FileWriter(outputCsvPath))) {
-            pw.println("x,y");
+        try (java.io.PrintWriter pw = openScatterCsv(outputCsvPath)) {
             int n = Math.min(xValues.size(), yValues.size());
             for (int i = 0; i < n; i++) {
-                pw.printf("%.6f,%.6f%n", xValues.get(i), yValues.get(i));
+                writeScatterRow(pw, xValues.get(i), yValues.get(i));
             }
         }
     }
 
+    // open a scatter csv for row by row writing
+    public static java.io.PrintWriter openScatterCsv(String outputCsvPath) throws java.io.IOException {
+        java.io.PrintWriter pw = new java.io.PrintWriter(new java.io.BufferedWriter(new java.io.FileWriter(outputCsvPath)));
+        pw.println("x,y");
+        return pw;
+    }
+
+    // one scatter csv row, a NaN y is written as an empty cell
+    public static void writeScatterRow(java.io.PrintWriter pw, double x, double y) {
+        if (Double.isNaN(y)) pw.printf("%.6f,%n", x);
+        else pw.printf("%.6f,%.6f%n", x, y);
+    }
+
     // save time series chart as png using XChart
     public static boolean saveTimeSeriesPng(String outputPngPath, Map<Integer, Double> yearToValue, String chartTitle, String yAxisLabel) {
         try {
-            List<Integer> years = new ArrayList<>(yearToValue.keySet());
-            Collections.sort(years);
-
-            double[] xs = new double[years.size()];
-            double[] ys = new double[years.size()];
-            for (int i = 0; i < years.size(); i++) {
-                xs[i] = years.get(i);
-                ys[i] = yearToValue.get(years.get(i));
-            }
-
-            XYChart chart = new XYChartBuilder()
-                    .title(chartTitle)
-                    .xAxisTitle("Year")
-                    .yAxisTitle(withUnitsY(yAxisLabel, chartTitle))
-                    .width(900).height(540)
-                    .build();
-
-            XYSeries series = chart.addSeries("Series", xs, ys);
-            series.setXYSeriesRenderStyle(XYSeries.XYSeriesRenderStyle.Line);
-            series.setMarker(SeriesMarkers.CIRCLE);
-
-            String base = outputPngPath.endsWith(".png")
-                    ? outputPngPath.substring(0, outputPngPath.length() - 4)
-                    : outputPngPath;
-            BitmapEncoder.saveBitmap(chart, base, BitmapFormat.PNG);
+            writeTimeSeriesPng(outputPngPath, yearToValue, chartTitle, yAxisLabel);
             return true;
         } catch (Exception ex) {
             System.out.println("chart save failed " + ex.getMessage());
@@ -71,33 +59,43 @@ public class Visualization {
         }
     }
 
+    // time series png, failures are left to the caller to report
+    static void writeTimeSeriesPng(String outputPngPath, Map<Integer, Double> yearToValue, String chartTitle, String yAxisLabel)
+            throws java.io.IOException {
+        List<Integer> years = new ArrayList<>(yearToValue.keySet());
+        Collections.sort(years);
+
+        double[] xs = new double[years.size()];
+        double[] ys = new double[years.size()];
+        for (int i = 0; i < years.size(); i++) {
+            xs[i] = years.get(i);
+            ys[i] = yearToValue.get(years.get(i));
+        }
+
+        XYChart chart = new XYChartBuilder()
+                .title(chartTitle)
+                .xAxisTitle("Year")
+                .yAxisTitle(withUnitsY(yAxisLabel, chartTitle))
+                .width(900).height(540)
+                .build();
+
+        XYSeries series = chart.addSeries("Series", xs, ys);
+        series.setXYSeriesRenderStyle(XYSeries.XYSeriesRenderStyle.Line);
+        series.setMarker(SeriesMarkers.CIRCLE);
+
+        String base = outputPngPath.endsWith(".png")
+                ? outputPngPath.substring(0, outputPngPath.length() - 4)
+                : outputPngPath;
+        BitmapEncoder.saveBitmap(chart, base, BitmapFormat.PNG);
+    }
+
     // save scatter chart as png using XChart
     public static boolean saveScatterPng(String outputPngPath, List<Double> xValues, List<Double> yValues,
                                          String chartTitle, String xAxisLabel, String yAxisLabel) {
         try {
             int n = Math.min(xValues.size(), yValues.size());
-            double[] xs = new double[n];
-            double[] ys = new double[n];
-            for (int i = 0; i < n; i++) {
-                xs[i] = xValues.get(i);
-                ys[i] = yValues.get(i);
-            }
-
-            XYChart chart = new XYChartBuilder()
-                    .title(chartTitle)
-                    .xAxisTitle(withUnitsX(xAxisLabel))
-                    .yAxisTitle(withUnitsY(yAxisLabel, chartTitle))
-                    .width(900).height(540)
-                    .build();
-
-            XYSeries series = chart.addSeries("Points", xs, ys);
-            series.setXYSeriesRenderStyle(XYSeries.XYSeriesRenderStyle.Scatter);
-            series.setMarker(SeriesMarkers.CIRCLE);
-
-            String base = outputPngPath.endsWith(".png")
-                    ? outputPngPath.substring(0, outputPngPath.length() - 4)
-                    : outputPngPath;
-            BitmapEncoder.saveBitmap(chart, base, BitmapFormat.PNG);
+            writeScatterPng(outputPngPath, toArray(xValues.subList(0, n)), toArray(yValues.subList(0, n)),
+                    chartTitle, xAxisLabel, yAxisLabel);
             return true;
         } catch (Exception ex) {
             System.out.println("chart save failed " + ex.getMessage());
@@ -105,6 +103,35 @@ public class Visualization {
         }
     }
 
+    // scatter png from primitive arrays of equal length, failures are left to the caller to report
+    // the arrays are handed to XChart as is, callers pass their own copies
+    static void writeScatterPng(String outputPngPath, double[] xs, double[] ys,
+                                String chartTitle, String xAxisLabel, String yAxisLabel) throws java.io.IOException {
+        if (xs.length != ys.length) throw new IllegalArgumentException("x and y lengths differ");
+
+        XYChart chart = new XYChartBuilder()
+                .title(chartTitle)
+                .xAxisTitle(withUnitsX(xAxisLabel))
+                .yAxisTitle(withUnitsY(yAxisLabel, chartTitle))
+                .width(900).height(540)
+                .build();
+
+        XYSeries series = chart.addSeries("Points", xs, ys);
+        series.setXYSeriesRenderStyle(XYSeries.XYSeriesRenderStyle.Scatter);
+        series.setMarker(SeriesMarkers.CIRCLE);
+
+        String base = outputPngPath.endsWith(".png")
+                ? outputPngPath.substring(0, outputPngPath.length() - 4)
+                : outputPngPath;
+        BitmapEncoder.saveBitmap(chart, base, BitmapFormat.PNG);
+    }
+
+    private static double[] toArray(List<Double> v) {
+        double[] out = new double[v.size()];
+        for (int i = 0; i < out.length; i++) out[i] = v.get(i);
+        return out;
+    }
+
     // helper for y axis units
     private static String withUnitsY(String yAxisLabel, String title) {
         String yl = yAxisLabel == null ? "" : yAxisLabel;
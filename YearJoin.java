@@ -0,0 +1,98 @@
+package main;
+
+import java.util.*;
+
+// year alignment between temperatures and gas series
+// temperatures are indexed once into primitive arrays, each gas is aligned row by row with a linear sort-merge
+public class YearJoin {
+
+    // how gas rows without a same-year temperature are handled
+    public enum Mode {
+        INNER,   // drop the row
+        LEFT,    // keep the row without a temperature
+        NEAREST; // use the closest temperature year within the tolerance, ties go to the earlier year
+
+        // case insensitive name, as typed in the menu or saved in a summary
+        public static Mode parse(String s) {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        }
+
+        // rows without a temperature are still reported
+        public boolean keepsUnmatched() { return this == LEFT; }
+    }
+
+    // merge state for one gas series, rows are expected sorted by year
+    // out of order rows still align correctly, they just cost a binary search
+    public final class Matcher {
+        private int j;                       // first temperature year >= last gas year
+        private int prev = Integer.MIN_VALUE;
+
+        private Matcher() { }
+
+        // aligned temperature for a gas year, NaN when there is none
+        public double temperatureFor(int year) {
+            if (year < prev) j = lowerBound(year);
+            else while (j < years.length && years[j] < year) j++;
+            prev = year;
+
+            if (j < years.length && years[j] == year) return temps[j];
+            if (mode != Mode.NEAREST) return Double.NaN;
+
+            int before = j - 1;
+            long dBefore = before >= 0 ? (long) year - years[before] : Long.MAX_VALUE;
+            long dAfter = j < years.length ? (long) years[j] - year : Long.MAX_VALUE;
+            if (dBefore <= dAfter && dBefore <= tolerance) return temps[before];
+            if (dAfter < dBefore && dAfter <= tolerance) return temps[j];
+            return Double.NaN;
+        }
+    }
+
+    private final int[] years;   // distinct, ascending
+    private final double[] temps;
+    private final Mode mode;
+    private final int tolerance;
+
+    // constructor, later readings for the same year replace earlier ones
+    public YearJoin(java.util.List<TempRecord> temperatures, Mode mode, int tolerance) {
+        if (tolerance < 0) throw new IllegalArgumentException("tolerance must not be negative");
+        this.mode = mode;
+        this.tolerance = mode == Mode.NEAREST ? tolerance : 0;
+
+        java.util.List<TempRecord> sorted = temperatures;
+        for (int i = 1; i < temperatures.size(); i++) {
+            if (temperatures.get(i).getYear() < temperatures.get(i - 1).getYear()) {
+                sorted = new ArrayList<>(temperatures);
+                sorted.sort(DatasetLoader.TEMP_ORDER);
+                break;
+            }
+        }
+
+        int[] ys = new int[sorted.size()];
+        double[] ts = new double[sorted.size()];
+        int n = 0;
+        for (TempRecord t : sorted) {
+            if (n > 0 && ys[n - 1] == t.getYear()) {
+                ts[n - 1] = t.getTemp();
+            } else {
+                ys[n] = t.getYear();
+                ts[n] = t.getTemp();
+                n++;
+            }
+        }
+        this.years = Arrays.copyOf(ys, n);
+        this.temps = Arrays.copyOf(ts, n);
+    }
+
+    // fresh merge state, one per gas series
+    public Matcher matcher() { return new Matcher(); }
+
+    private int lowerBound(int year) {
+        int lo = 0, hi = years.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (years[mid] < year) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}